@@ -1,38 +1,149 @@
 package at.dcosta.trains.configuration;
 
 import at.dcosta.trains.error.TrainBuilderException;
+import at.dcosta.trains.model.Engine;
 import at.dcosta.trains.model.Vehicle;
+import at.dcosta.trains.model.Waggon;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashSet;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Reads {@link TrainDepot}s from YAML. An instance is thread safe and should get
+ * reused, because creating the underlying jackson reader is expensive.
+ */
 public class ConfigurationReader {
+
+    private static final ConfigurationReader DEFAULT = new ConfigurationReader();
+
+    private final ObjectReader depotReader;
+
+    public ConfigurationReader() {
+        depotReader = new ObjectMapper(new YAMLFactory()).readerFor(TrainDepot.class);
+    }
+
     public static TrainDepot read(InputStream inputStream) throws IOException {
-        ObjectMapper objectMapper = new ObjectMapper(new YAMLFactory());
-        TrainDepot trainDepot = objectMapper.readValue(inputStream, TrainDepot.class);
+        return DEFAULT.readDepot(inputStream);
+    }
+
+    public TrainDepot readDepot(InputStream inputStream) throws IOException {
+        TrainDepot trainDepot = parse(inputStream);
+        // assure that serailNumbers are unique
+        assureUniqueSerials(List.of(trainDepot), List.of("the configuration"));
+        return trainDepot;
+    }
+
+    /**
+     * Reads all *.yaml and *.yml files of the directory (in the order of their names)
+     * and merges them into a single depot.
+     */
+    public TrainDepot readDirectory(Path directory, int threads) throws IOException {
+        List<Path> files;
+        try (Stream<Path> entries = Files.list(directory)) {
+            files = entries.filter(Files::isRegularFile)
+                    .filter(file -> file.getFileName().toString().endsWith(".yaml") || file.getFileName().toString().endsWith(".yml"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        return readFiles(files, threads);
+    }
+
+    /**
+     * Reads the files concurrently and merges them into a single depot. The vehicles
+     * appear in the order of the given files. SerialNumbers must be unique across all files.
+     */
+    public TrainDepot readFiles(List<Path> files, int threads) throws IOException {
+        if (threads < 1) {
+            throw new TrainBuilderException("threads argument must be > 0!");
+        }
+        List<TrainDepot> fragments = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())));
+        try {
+            List<Future<TrainDepot>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(executor.submit(() -> {
+                    try (InputStream in = Files.newInputStream(file)) {
+                        return parse(in);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                fragments.add(getFragment(futures.get(i), files.get(i)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assureUniqueSerials(fragments, files.stream().map(Path::toString).collect(Collectors.toList()));
+        List<Engine> engines = new ArrayList<>();
+        List<Waggon> waggons = new ArrayList<>();
+        for (TrainDepot fragment : fragments) {
+            engines.addAll(fragment.getEngines());
+            waggons.addAll(fragment.getWaggons());
+        }
+        return new TrainDepot(engines, waggons);
+    }
+
+    private TrainDepot parse(InputStream inputStream) throws IOException {
+        TrainDepot trainDepot = depotReader.readValue(inputStream);
 
         // jackson does not use the validating builders but the default builders
         // a lombok bug?
         trainDepot.getWaggons().stream().forEach(waggon -> waggon.validate());
         trainDepot.getEngines().stream().forEach(engine -> engine.validate());
-
-        // assure that serailNumbers are unique
-        Set<UUID> serials = new HashSet<>();
-        assureUniqueSerials(trainDepot.getWaggons(), serials);
-        assureUniqueSerials(trainDepot.getEngines(), serials);
         return trainDepot;
     }
 
-    private static void assureUniqueSerials(List<? extends Vehicle> vehicles, Set<UUID> serials) {
+    private static TrainDepot getFragment(Future<TrainDepot> future, Path file) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("reading " + file + " got interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof TrainBuilderException) {
+                throw new TrainBuilderException(file + ": " + cause.getMessage());
+            }
+            throw new IOException("reading " + file + " failed", cause);
+        }
+    }
+
+    private static void assureUniqueSerials(List<TrainDepot> depots, List<String> sources) {
+        Map<UUID, String> serials = new HashMap<>();
+        for (int i = 0; i < depots.size(); i++) {
+            assureUniqueSerials(depots.get(i).getWaggons(), sources.get(i), serials);
+            assureUniqueSerials(depots.get(i).getEngines(), sources.get(i), serials);
+        }
+    }
+
+    private static void assureUniqueSerials(List<? extends Vehicle> vehicles, String source, Map<UUID, String> serials) {
         for (Vehicle vehicle : vehicles) {
-            if (!serials.add(vehicle.getSerialNumber())) {
-                throw new TrainBuilderException("the configuration contains more than one entry with SerialNumber=" + vehicle.getSerialNumber());
+            String previousSource = serials.putIfAbsent(vehicle.getSerialNumber(), source);
+            if (previousSource != null) {
+                if (previousSource.equals(source)) {
+                    throw new TrainBuilderException(source + " contains more than one entry with SerialNumber=" + vehicle.getSerialNumber());
+                }
+                throw new TrainBuilderException("both " + previousSource + " and " + source + " contain an entry with SerialNumber=" + vehicle.getSerialNumber());
             }
         }
     }
@@ -17,6 +17,11 @@ public class TrainDepot {
         waggons = new ArrayList<>();
     }
 
+    public TrainDepot(List<Engine> engines, List<Waggon> waggons) {
+        this.engines = new ArrayList<>(engines);
+        this.waggons = new ArrayList<>(waggons);
+    }
+
     public List<Engine> getEngines() {
         return Collections.unmodifiableList(engines);
     }
@@ -0,0 +1,24 @@
+package at.dcosta.trains.depot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+/**
+ * The JSON form of the requests and responses exchanged with {@link DepotNode}s.
+ */
+final class DepotMessages {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private DepotMessages() {
+    }
+
+    static String write(Object message) throws IOException {
+        return OBJECT_MAPPER.writeValueAsString(message);
+    }
+
+    static <T> T read(String json, Class<T> type) throws IOException {
+        return OBJECT_MAPPER.readValue(json, type);
+    }
+}
@@ -0,0 +1,199 @@
+package at.dcosta.trains.depot;
+
+import at.dcosta.trains.configuration.TrainDepot;
+import at.dcosta.trains.error.DepotException;
+import at.dcosta.trains.model.Engine;
+import at.dcosta.trains.model.Train;
+import at.dcosta.trains.model.Vehicle;
+import at.dcosta.trains.model.Waggon;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A yard owning a shard of the vehicles of a {@link PartitionedDepot}. A vehicle is
+ * owned by exactly one node and can only get released while it is not part of a train.
+ * Trains are composed through the node ({@link #createTrain}, {@link #addToTrain},
+ * {@link #removeFromTrain}), so that a vehicle can not join a train while it gets released.
+ */
+public class DepotNode {
+
+    // a request arriving after this many newer ones is no longer recognized as a repetition
+    private static final int REMEMBERED_REQUESTS = 10_000;
+
+    private final String name;
+    private final Map<UUID, Vehicle> vehicles;
+    private final Map<String, DepotResponse> outcomes = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DepotResponse> eldest) {
+            return size() > REMEMBERED_REQUESTS;
+        }
+    };
+
+    public DepotNode(String name, TrainDepot trainDepot) {
+        if (name == null) {
+            throw new DepotException("Node name must not be null!");
+        }
+        this.name = name;
+        vehicles = new LinkedHashMap<>();
+        accept(trainDepot);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized int getVehicleCount() {
+        return vehicles.size();
+    }
+
+    /**
+     * The vehicle owned by this node, null if there is none. It must not get added to or
+     * removed from a train directly, use the composition methods of the node instead.
+     */
+    public synchronized Vehicle getVehicle(UUID serialNumber) {
+        return vehicles.get(serialNumber);
+    }
+
+    public synchronized Train createTrain(String trainName, UUID engineSerial) {
+        Vehicle engine = get(List.of(engineSerial)).get(0);
+        if (!(engine instanceof Engine)) {
+            throw new DepotException("The vehicle with SerialNumber " + engineSerial + " is not an engine!");
+        }
+        return new Train(trainName, (Engine) engine);
+    }
+
+    /**
+     * Adds the vehicle to the train. Besides the node this synchronizes on the train (always
+     * in this order), so that a train with vehicles of several nodes can get composed
+     * through all of them concurrently. Other changes of such a train must synchronize on
+     * the train as well.
+     */
+    public synchronized void addToTrain(Train train, UUID serialNumber) {
+        Vehicle vehicle = get(List.of(serialNumber)).get(0);
+        synchronized (train) {
+            train.add(vehicle);
+        }
+    }
+
+    /**
+     * Removes the vehicle from the train, synchronizing like {@link #addToTrain}.
+     */
+    public synchronized void removeFromTrain(Train train, UUID serialNumber) {
+        Vehicle vehicle = get(List.of(serialNumber)).get(0);
+        synchronized (train) {
+            train.remove(vehicle);
+        }
+    }
+
+    /**
+     * Handles a request. Failures are reported in the response, so that all transports
+     * behave the same.
+     */
+    public synchronized DepotResponse handle(DepotRequest request) {
+        String requestId = request.getRequestId();
+        boolean remembered = requestId != null
+                && (request.getOperation() == DepotRequest.Operation.RELEASE || request.getOperation() == DepotRequest.Operation.ACCEPT);
+        if (remembered && outcomes.containsKey(requestId)) {
+            // a repeated request or one that arrives after its STATUS: never apply it twice
+            return outcomes.get(requestId);
+        }
+        DepotResponse response = apply(request);
+        if (remembered) {
+            outcomes.put(requestId, response);
+        }
+        return response;
+    }
+
+    private DepotResponse apply(DepotRequest request) {
+        try {
+            if (request.getOperation() == null) {
+                throw new DepotException("The request does not contain an operation!");
+            }
+            switch (request.getOperation()) {
+                case INVENTORY:
+                    return DepotResponse.builder().vehicles(toDepot(vehicles.values())).build();
+                case LOOKUP:
+                    return DepotResponse.builder().vehicles(toDepot(get(request.getSerials()))).build();
+                case RELEASE:
+                    return DepotResponse.builder().vehicles(release(request.getSerials())).build();
+                case ACCEPT:
+                    accept(request.getVehicles());
+                    return DepotResponse.builder().build();
+                case STATUS:
+                    return status(request.getRequestId());
+                default:
+                    throw new DepotException("Unknown operation " + request.getOperation() + "!");
+            }
+        } catch (RuntimeException e) {
+            return DepotResponse.builder().error(name + ": " + e.getMessage()).build();
+        }
+    }
+
+    private DepotResponse status(String requestId) {
+        if (requestId == null) {
+            throw new DepotException("The status request does not contain a request id!");
+        }
+        DepotResponse outcome = outcomes.get(requestId);
+        if (outcome == null) {
+            outcome = DepotResponse.builder().error(name + ": the request " + requestId + " was not applied and got cancelled").build();
+            outcomes.put(requestId, outcome);
+        }
+        return outcome;
+    }
+
+    private List<Vehicle> get(List<UUID> serials) {
+        List<Vehicle> found = new ArrayList<>();
+        for (UUID serial : serials) {
+            Vehicle vehicle = vehicles.get(serial);
+            if (vehicle == null) {
+                throw new DepotException("The vehicle with SerialNumber " + serial + " is not owned by this node!");
+            }
+            found.add(vehicle);
+        }
+        return found;
+    }
+
+    private TrainDepot release(List<UUID> serials) {
+        List<Vehicle> released = get(serials);
+        for (Vehicle vehicle : released) {
+            if (vehicle.getMemberOfTrain() != null) {
+                throw new DepotException("The " + vehicle.getClass().getSimpleName() + " with SerialNumber " + vehicle.getSerialNumber() + " belongs to the train '" + vehicle.getMemberOfTrain().getName() + "' and can not leave the node!");
+            }
+        }
+        released.forEach(vehicle -> vehicles.remove(vehicle.getSerialNumber()));
+        return toDepot(released);
+    }
+
+    private void accept(TrainDepot trainDepot) {
+        if (trainDepot == null) {
+            throw new DepotException("The request does not contain vehicles!");
+        }
+        List<Vehicle> accepted = new ArrayList<>(trainDepot.getEngines());
+        accepted.addAll(trainDepot.getWaggons());
+        for (Vehicle vehicle : accepted) {
+            vehicle.validate();
+            if (vehicles.containsKey(vehicle.getSerialNumber())) {
+                throw new DepotException("The vehicle with SerialNumber " + vehicle.getSerialNumber() + " is already owned by this node!");
+            }
+        }
+        accepted.forEach(vehicle -> vehicles.put(vehicle.getSerialNumber(), vehicle));
+    }
+
+    private static TrainDepot toDepot(Collection<Vehicle> vehicles) {
+        List<Engine> engines = new ArrayList<>();
+        List<Waggon> waggons = new ArrayList<>();
+        for (Vehicle vehicle : vehicles) {
+            if (vehicle instanceof Engine) {
+                engines.add((Engine) vehicle);
+            } else {
+                waggons.add((Waggon) vehicle);
+            }
+        }
+        return new TrainDepot(engines, waggons);
+    }
+}
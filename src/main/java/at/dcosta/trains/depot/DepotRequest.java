@@ -0,0 +1,57 @@
+package at.dcosta.trains.depot;
+
+import at.dcosta.trains.configuration.TrainDepot;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+import lombok.ToString;
+import lombok.extern.jackson.Jacksonized;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A batched request to a {@link DepotNode}. Depending on the operation either the
+ * serials or the vehicles are set. RELEASE and ACCEPT requests can carry a request id,
+ * the node then applies them at most once and remembers their outcome for STATUS.
+ */
+@Getter
+@Jacksonized
+@Builder
+@ToString
+public class DepotRequest {
+
+    public enum Operation {
+        /**
+         * returns all vehicles of the node
+         */
+        INVENTORY,
+        /**
+         * returns the vehicles with the given serials
+         */
+        LOOKUP,
+        /**
+         * removes the vehicles with the given serials from the node and returns them
+         */
+        RELEASE,
+        /**
+         * adds the given vehicles to the node
+         */
+        ACCEPT,
+        /**
+         * returns the outcome of the RELEASE or ACCEPT with the request id. If the node has
+         * not seen that request yet, it refuses it for good and answers with an error, so
+         * the answer stays valid even if the request arrives later.
+         */
+        STATUS
+    }
+
+    private final Operation operation;
+
+    private final String requestId;
+
+    @Singular
+    private final List<UUID> serials;
+
+    private final TrainDepot vehicles;
+}
@@ -0,0 +1,21 @@
+package at.dcosta.trains.depot;
+
+import at.dcosta.trains.configuration.TrainDepot;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.jackson.Jacksonized;
+
+@Getter
+@Jacksonized
+@Builder
+@ToString
+public class DepotResponse {
+
+    private final TrainDepot vehicles;
+
+    /**
+     * the reason why the request failed, null if it succeeded
+     */
+    private final String error;
+}
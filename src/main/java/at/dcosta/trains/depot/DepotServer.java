@@ -0,0 +1,94 @@
+package at.dcosta.trains.depot;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves a {@link DepotNode} on a loopback port for the {@link SocketTransport}. Every
+ * connection carries one request and one response, each as a single line of JSON.
+ */
+public class DepotServer implements Closeable {
+
+    private static final int DEFAULT_READ_TIMEOUT_MILLIS = 30_000;
+
+    private final DepotNode node;
+    private final int readTimeoutMillis;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+
+    public DepotServer(DepotNode node) throws IOException {
+        this(node, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param readTimeoutMillis how long to wait for the request of a connected client
+     */
+    public DepotServer(DepotNode node, int readTimeoutMillis) throws IOException {
+        this.node = node;
+        this.readTimeoutMillis = readTimeoutMillis;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor = Executors.newCachedThreadPool();
+        executor.submit(this::acceptConnections);
+    }
+
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.submit(() -> serve(socket));
+            } catch (SocketException e) {
+                // the server got closed
+            } catch (IOException e) {
+                // try the next connection
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            socket.setSoTimeout(readTimeoutMillis);
+            String line = in.readLine();
+            if (line == null) {
+                return;
+            }
+            DepotResponse response;
+            try {
+                response = node.handle(DepotMessages.read(line, DepotRequest.class));
+            } catch (IOException e) {
+                response = DepotResponse.builder().error(node.getName() + ": invalid request: " + e.getMessage()).build();
+            }
+            out.write(DepotMessages.write(response));
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            // the client went away or did not send its request in time, nothing to answer
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            serverSocket.close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package at.dcosta.trains.depot;
+
+import java.io.IOException;
+
+/**
+ * Delivers requests to the {@link DepotNode}s of a {@link PartitionedDepot}.
+ */
+public interface DepotTransport {
+
+    DepotResponse send(String node, DepotRequest request) throws IOException;
+}
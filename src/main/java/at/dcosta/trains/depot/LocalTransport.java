@@ -0,0 +1,34 @@
+package at.dcosta.trains.depot;
+
+import at.dcosta.trains.error.DepotException;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delivers the requests to nodes in the same JVM. Requests and responses take the same
+ * JSON round trip as with the {@link SocketTransport}, so that the vehicles handed out
+ * are copies, just like the ones of remote nodes.
+ */
+public class LocalTransport implements DepotTransport {
+
+    private final Map<String, DepotNode> nodes = new ConcurrentHashMap<>();
+
+    public LocalTransport register(DepotNode node) {
+        if (nodes.putIfAbsent(node.getName(), node) != null) {
+            throw new DepotException("There is already a node with the name '" + node.getName() + "'!");
+        }
+        return this;
+    }
+
+    @Override
+    public DepotResponse send(String node, DepotRequest request) throws IOException {
+        DepotNode depotNode = nodes.get(node);
+        if (depotNode == null) {
+            throw new DepotException("Unknown node '" + node + "'!");
+        }
+        DepotResponse response = depotNode.handle(DepotMessages.read(DepotMessages.write(request), DepotRequest.class));
+        return DepotMessages.read(DepotMessages.write(response), DepotResponse.class);
+    }
+}
@@ -0,0 +1,430 @@
+package at.dcosta.trains.depot;
+
+import at.dcosta.trains.configuration.TrainDepot;
+import at.dcosta.trains.error.DepotException;
+import at.dcosta.trains.error.DepotTransferException;
+import at.dcosta.trains.model.Engine;
+import at.dcosta.trains.model.Vehicle;
+import at.dcosta.trains.model.Waggon;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A depot whose vehicles are spread over several {@link DepotNode}s. It keeps track of
+ * the node owning each vehicle, so that lookups and transfers send one batched request
+ * per involved node. The requests to the involved nodes are sent in parallel.
+ * <p>
+ * Every node has a read/write lock: lookups share the locks of the nodes they read from,
+ * transfers hold the locks of their source and target nodes exclusively. Operations on
+ * different nodes do not block each other, and a lookup never sees a vehicle in transit.
+ */
+public class PartitionedDepot implements Closeable {
+
+    private static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
+
+    private final DepotTransport transport;
+    private final List<String> nodes;
+    private final long timeoutMillis;
+    private final Map<UUID, String> owners;
+    private final Map<String, ReadWriteLock> locks;
+    private final ExecutorService executor;
+
+    public PartitionedDepot(DepotTransport transport, List<String> nodes) throws IOException {
+        this(transport, nodes, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param timeoutMillis how long to wait for the response of a node
+     */
+    public PartitionedDepot(DepotTransport transport, List<String> nodes, long timeoutMillis) throws IOException {
+        if (nodes.isEmpty()) {
+            throw new DepotException("A partitioned depot needs at least one node!");
+        }
+        this.transport = transport;
+        this.nodes = List.copyOf(nodes);
+        this.timeoutMillis = timeoutMillis;
+        owners = new ConcurrentHashMap<>();
+        locks = new LinkedHashMap<>();
+        nodes.forEach(node -> locks.put(node, new ReentrantReadWriteLock()));
+        executor = Executors.newCachedThreadPool();
+
+        try {
+            readOwners();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void readOwners() throws IOException {
+        Map<String, List<UUID>> inventory = new LinkedHashMap<>();
+        nodes.forEach(node -> inventory.put(node, List.of()));
+        Map<String, TrainDepot> responses = sendToAll(DepotRequest.Operation.INVENTORY, inventory);
+        responses.forEach((node, vehicles) -> allVehicles(vehicles).forEach(vehicle -> {
+            String owner = owners.putIfAbsent(vehicle.getSerialNumber(), node);
+            if (owner != null) {
+                throw new DepotException("The vehicle with SerialNumber " + vehicle.getSerialNumber() + " is owned by the nodes '" + owner + "' and '" + node + "'!");
+            }
+        }));
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * the name of the node owning the vehicle, null if the vehicle is unknown
+     */
+    public String getOwner(UUID serialNumber) {
+        return owners.get(serialNumber);
+    }
+
+    /**
+     * Looks up the vehicles on their nodes. The result contains copies of the vehicles
+     * (independent of the transport) in the order of the given serials.
+     */
+    public Map<UUID, Vehicle> lookup(Collection<UUID> serialNumbers) throws IOException {
+        while (true) {
+            Map<String, List<UUID>> byOwner = groupByOwner(serialNumbers);
+            List<Lock> held = lock(byOwner.keySet(), false);
+            try {
+                // a transfer may have moved vehicles while waiting for the locks
+                if (!byOwner.equals(groupByOwner(serialNumbers))) {
+                    continue;
+                }
+                Map<String, TrainDepot> responses = sendToAll(DepotRequest.Operation.LOOKUP, byOwner);
+                Map<UUID, Vehicle> found = new LinkedHashMap<>();
+                serialNumbers.forEach(serial -> found.put(serial, null));
+                responses.values().forEach(vehicles -> allVehicles(vehicles).forEach(vehicle -> found.put(vehicle.getSerialNumber(), vehicle)));
+                return found;
+            } finally {
+                unlock(held);
+            }
+        }
+    }
+
+    /**
+     * Moves the vehicles to the target node. All source nodes release their vehicles in
+     * parallel, then the target node accepts them in one batch. The transfer is all or
+     * nothing: if a node refuses, the released vehicles are given back to their source
+     * nodes. If a node does not answer in time, it is asked for the STATUS of the request,
+     * which also keeps a late request from being applied, so that no vehicle ends up owned
+     * by two nodes. Vehicles whose owner can not be determined anymore are reported by a
+     * {@link DepotTransferException} and can get found again with {@link #reconcile}.
+     */
+    public void transfer(Collection<UUID> serialNumbers, String targetNode) throws IOException {
+        if (!nodes.contains(targetNode)) {
+            throw new DepotException("Unknown node '" + targetNode + "'!");
+        }
+        while (true) {
+            Map<String, List<UUID>> bySource = groupByOwner(serialNumbers);
+            bySource.remove(targetNode);
+            if (bySource.isEmpty()) {
+                return;
+            }
+            List<String> involved = new ArrayList<>(bySource.keySet());
+            involved.add(targetNode);
+            List<Lock> held = lock(involved, true);
+            try {
+                // another transfer may have moved vehicles while waiting for the locks
+                Map<String, List<UUID>> current = groupByOwner(serialNumbers);
+                current.remove(targetNode);
+                if (!bySource.equals(current)) {
+                    continue;
+                }
+                transferLocked(bySource, targetNode);
+                return;
+            } finally {
+                unlock(held);
+            }
+        }
+    }
+
+    /**
+     * Asks all nodes for their inventory and updates the owners of the given vehicles,
+     * e.g. after a {@link DepotTransferException} orphaned them. Returns the serials no
+     * node holds.
+     */
+    public List<UUID> reconcile(Collection<UUID> serialNumbers) throws IOException {
+        List<Lock> held = lock(nodes, true);
+        try {
+            Map<String, List<UUID>> inventory = new LinkedHashMap<>();
+            nodes.forEach(node -> inventory.put(node, List.of()));
+            Map<UUID, String> found = new LinkedHashMap<>();
+            for (Map.Entry<String, TrainDepot> entry : sendToAll(DepotRequest.Operation.INVENTORY, inventory).entrySet()) {
+                for (Vehicle vehicle : allVehicles(entry.getValue())) {
+                    if (!serialNumbers.contains(vehicle.getSerialNumber())) {
+                        continue;
+                    }
+                    String owner = found.putIfAbsent(vehicle.getSerialNumber(), entry.getKey());
+                    if (owner != null) {
+                        throw new DepotException("The vehicle with SerialNumber " + vehicle.getSerialNumber() + " is owned by the nodes '" + owner + "' and '" + entry.getKey() + "'!");
+                    }
+                }
+            }
+            List<UUID> missing = new ArrayList<>();
+            for (UUID serial : serialNumbers) {
+                String owner = found.get(serial);
+                if (owner == null) {
+                    owners.remove(serial);
+                    missing.add(serial);
+                } else {
+                    owners.put(serial, owner);
+                }
+            }
+            return missing;
+        } finally {
+            unlock(held);
+        }
+    }
+
+    private void transferLocked(Map<String, List<UUID>> bySource, String targetNode) throws IOException {
+        String transferId = UUID.randomUUID().toString();
+        Map<String, Future<TrainDepot>> releases = new LinkedHashMap<>();
+        bySource.forEach((source, serials) -> releases.put(source, executor.submit(() -> applyOnce(source, DepotRequest.builder()
+                .operation(DepotRequest.Operation.RELEASE).requestId(transferId + ":release:" + source).serials(serials).build()))));
+
+        Map<String, TrainDepot> released = new LinkedHashMap<>();
+        List<UUID> orphaned = new ArrayList<>();
+        Exception failure = null;
+        for (Map.Entry<String, Future<TrainDepot>> entry : releases.entrySet()) {
+            String source = entry.getKey();
+            try {
+                released.put(source, join(source, entry.getValue()));
+            } catch (CancelledRequestException e) {
+                // the source did not answer in time, but keeps its vehicles
+                failure = addFailure(failure, e.getCause());
+            } catch (DepotException e) {
+                // refused or cancelled, the source keeps its vehicles
+                failure = addFailure(failure, e);
+            } catch (IOException e) {
+                // the source may or may not have released them
+                failure = addFailure(failure, e);
+                orphaned.addAll(bySource.get(source));
+            }
+        }
+
+        if (failure == null) {
+            List<UUID> serials = new ArrayList<>();
+            bySource.values().forEach(serials::addAll);
+            try {
+                applyOnce(targetNode, DepotRequest.builder().operation(DepotRequest.Operation.ACCEPT)
+                        .requestId(transferId + ":accept").vehicles(merge(released.values())).build());
+                serials.forEach(serial -> owners.put(serial, targetNode));
+                return;
+            } catch (CancelledRequestException e) {
+                failure = e.getCause();
+            } catch (DepotException e) {
+                failure = e;
+            } catch (IOException e) {
+                // the target may own them, giving them back could let two nodes own them
+                failure = e;
+                orphaned.addAll(serials);
+                released.clear();
+            }
+        }
+
+        giveBack(transferId, released, bySource, failure, orphaned);
+        orphaned.forEach(owners::remove);
+        if (!orphaned.isEmpty()) {
+            throw new DepotTransferException("The transfer to node '" + targetNode + "' failed (" + failure.getMessage()
+                    + "), the owner of the vehicles with SerialNumbers " + orphaned + " is unknown!", failure, orphaned);
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        throw (DepotException) failure;
+    }
+
+    private void giveBack(String transferId, Map<String, TrainDepot> released, Map<String, List<UUID>> bySource, Exception failure, List<UUID> orphaned) {
+        for (Map.Entry<String, TrainDepot> entry : released.entrySet()) {
+            String source = entry.getKey();
+            try {
+                applyOnce(source, DepotRequest.builder().operation(DepotRequest.Operation.ACCEPT)
+                        .requestId(transferId + ":giveback:" + source).vehicles(entry.getValue()).build());
+            } catch (DepotException | IOException e) {
+                failure.addSuppressed(e);
+                orphaned.addAll(bySource.get(source));
+            }
+        }
+    }
+
+    /**
+     * Sends a RELEASE or ACCEPT with a request id. If the node does not answer in time,
+     * the request may still be on its way or waiting inside the node, so the node gets
+     * asked for its STATUS: it either reports the outcome of the request or cancels it
+     * for good. Throws a DepotException if the node refused the request, a
+     * CancelledRequestException if it never will apply it, and an IOException if the
+     * outcome stays unknown.
+     */
+    private TrainDepot applyOnce(String node, DepotRequest request) throws IOException {
+        try {
+            return send(node, request);
+        } catch (IOException e) {
+            try {
+                return send(node, DepotRequest.builder().operation(DepotRequest.Operation.STATUS).requestId(request.getRequestId()).build());
+            } catch (DepotException cancelled) {
+                e.addSuppressed(cancelled);
+                throw new CancelledRequestException(e);
+            } catch (IOException unknown) {
+                e.addSuppressed(unknown);
+                throw e;
+            }
+        }
+    }
+
+    private static TrainDepot join(String node, Future<TrainDepot> future) throws IOException {
+        try {
+            // the task itself limits the time spent waiting for the node
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The request to node '" + node + "' got interrupted", e);
+        } catch (ExecutionException e) {
+            throw rethrow(node, e);
+        }
+    }
+
+    private static Exception addFailure(Exception failure, Exception e) {
+        if (failure == null) {
+            return e;
+        }
+        failure.addSuppressed(e);
+        return failure;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private List<Lock> lock(Collection<String> nodeNames, boolean exclusive) {
+        // always lock in the order of the node names to avoid deadlocks
+        List<Lock> held = new ArrayList<>();
+        for (String node : new TreeSet<>(nodeNames)) {
+            Lock lock = exclusive ? locks.get(node).writeLock() : locks.get(node).readLock();
+            lock.lock();
+            held.add(lock);
+        }
+        return held;
+    }
+
+    private static void unlock(List<Lock> held) {
+        for (int i = held.size() - 1; i >= 0; i--) {
+            held.get(i).unlock();
+        }
+    }
+
+    private Map<String, List<UUID>> groupByOwner(Collection<UUID> serialNumbers) {
+        Map<String, List<UUID>> byOwner = new LinkedHashMap<>();
+        for (UUID serial : serialNumbers) {
+            String owner = owners.get(serial);
+            if (owner == null) {
+                throw new DepotException("The vehicle with SerialNumber " + serial + " is not part of the depot!");
+            }
+            byOwner.computeIfAbsent(owner, node -> new ArrayList<>()).add(serial);
+        }
+        return byOwner;
+    }
+
+    private Map<String, TrainDepot> sendToAll(DepotRequest.Operation operation, Map<String, List<UUID>> serialsByNode) throws IOException {
+        Map<String, Future<TrainDepot>> futures = new LinkedHashMap<>();
+        serialsByNode.forEach((node, serials) -> futures.put(node,
+                executor.submit(() -> request(node, DepotRequest.builder().operation(operation).serials(serials).build()))));
+
+        Map<String, TrainDepot> responses = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<TrainDepot>> entry : futures.entrySet()) {
+            responses.put(entry.getKey(), await(entry.getKey(), entry.getValue()));
+        }
+        return responses;
+    }
+
+    private TrainDepot send(String node, DepotRequest request) throws IOException {
+        return await(node, executor.submit(() -> request(node, request)));
+    }
+
+    private TrainDepot request(String node, DepotRequest request) throws IOException {
+        DepotResponse response = transport.send(node, request);
+        if (response.getError() != null) {
+            throw new DepotException(response.getError());
+        }
+        return response.getVehicles();
+    }
+
+    private TrainDepot await(String node, Future<TrainDepot> future) throws IOException {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("The request to node '" + node + "' got interrupted", e);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new IOException("The node '" + node + "' did not answer within " + timeoutMillis + "ms", e);
+        } catch (ExecutionException e) {
+            throw rethrow(node, e);
+        }
+    }
+
+    /**
+     * returns the IOException causing the failed request, throws any other cause
+     */
+    private static IOException rethrow(String node, ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+            return (IOException) e.getCause();
+        }
+        if (e.getCause() instanceof DepotException) {
+            throw (DepotException) e.getCause();
+        }
+        throw new DepotException("The request to node '" + node + "' failed: " + e.getCause().getMessage(), e.getCause());
+    }
+
+    private static TrainDepot merge(Collection<TrainDepot> depots) {
+        List<Engine> engines = new ArrayList<>();
+        List<Waggon> waggons = new ArrayList<>();
+        for (TrainDepot depot : depots) {
+            engines.addAll(depot.getEngines());
+            waggons.addAll(depot.getWaggons());
+        }
+        return new TrainDepot(engines, waggons);
+    }
+
+    private static List<Vehicle> allVehicles(TrainDepot trainDepot) {
+        List<Vehicle> vehicles = new ArrayList<>(trainDepot.getEngines());
+        vehicles.addAll(trainDepot.getWaggons());
+        return vehicles;
+    }
+
+    /**
+     * a request that did not get applied in time and got cancelled, the cause is the
+     * IOException of the request
+     */
+    private static class CancelledRequestException extends DepotException {
+        CancelledRequestException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package at.dcosta.trains.depot;
+
+import at.dcosta.trains.error.DepotException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delivers the requests to {@link DepotServer}s over sockets.
+ */
+public class SocketTransport implements DepotTransport {
+
+    private static final int DEFAULT_TIMEOUT_MILLIS = 30_000;
+
+    private final Map<String, InetSocketAddress> addresses = new ConcurrentHashMap<>();
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    public SocketTransport() {
+        this(DEFAULT_TIMEOUT_MILLIS, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param readTimeoutMillis how long to wait for the response of a node
+     */
+    public SocketTransport(int connectTimeoutMillis, int readTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    public SocketTransport register(String node, InetSocketAddress address) {
+        if (addresses.putIfAbsent(node, address) != null) {
+            throw new DepotException("There is already a node with the name '" + node + "'!");
+        }
+        return this;
+    }
+
+    @Override
+    public DepotResponse send(String node, DepotRequest request) throws IOException {
+        InetSocketAddress address = addresses.get(node);
+        if (address == null) {
+            throw new DepotException("Unknown node '" + node + "'!");
+        }
+        try (Socket socket = connect(address);
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            out.write(DepotMessages.write(request));
+            out.write('\n');
+            out.flush();
+            String line = in.readLine();
+            if (line == null) {
+                throw new IOException("The node '" + node + "' closed the connection without response");
+            }
+            return DepotMessages.read(line, DepotResponse.class);
+        }
+    }
+
+    private Socket connect(InetSocketAddress address) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(address, connectTimeoutMillis);
+            socket.setSoTimeout(readTimeoutMillis);
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package at.dcosta.trains.error;
+
+public class DepotException extends RuntimeException {
+    public DepotException(String message) {
+        super(message);
+    }
+
+    public DepotException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,27 @@
+package at.dcosta.trains.error;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A transfer failed in a way that left vehicles without a known owner, e.g. because a
+ * node did not answer whether it applied a request. Once the nodes are reachable again,
+ * PartitionedDepot.reconcile(getOrphanedSerials()) finds the owners of the vehicles.
+ */
+public class DepotTransferException extends DepotException {
+
+    private final List<UUID> orphanedSerials;
+
+    public DepotTransferException(String message, Throwable cause, List<UUID> orphanedSerials) {
+        super(message, cause);
+        this.orphanedSerials = List.copyOf(orphanedSerials);
+    }
+
+    /**
+     * the serials of the vehicles no node is known to own anymore
+     */
+    public List<UUID> getOrphanedSerials() {
+        return Collections.unmodifiableList(orphanedSerials);
+    }
+}
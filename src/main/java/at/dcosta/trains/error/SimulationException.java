@@ -0,0 +1,11 @@
+package at.dcosta.trains.error;
+
+public class SimulationException extends RuntimeException {
+    public SimulationException(String message) {
+        super(message);
+    }
+
+    public SimulationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,6 +1,7 @@
 package at.dcosta.trains.model;
 
 import at.dcosta.trains.error.TrainBuilderException;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.SuperBuilder;
@@ -36,6 +37,7 @@ public abstract class Vehicle {
     }
 
     @Setter
+    @JsonIgnore
     private Train memberOfTrain;
 
     @Min(value = 1000, message = "Train vehicles with less than 1000kg can not get constructed!")
@@ -0,0 +1,28 @@
+package at.dcosta.trains.simulation;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.util.Comparator;
+
+/**
+ * A problem that stopped a train during the simulation, e.g. too many boarding
+ * passengers or engines being too weak for the next leg.
+ */
+@Getter
+@RequiredArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class Incident {
+
+    static final Comparator<Incident> ORDER = Comparator.comparingLong(Incident::getTime)
+            .thenComparing(Incident::getTrainName)
+            .thenComparing(Incident::getStation);
+
+    private final long time;
+    private final String trainName;
+    private final String station;
+    private final String message;
+}
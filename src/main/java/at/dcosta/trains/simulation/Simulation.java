@@ -0,0 +1,165 @@
+package at.dcosta.trains.simulation;
+
+import at.dcosta.trains.error.SimulationException;
+import at.dcosta.trains.model.Train;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Discrete event simulation of trains running their timetables. At every stop the
+ * passengers and freight get unloaded and loaded, before every leg it is checked
+ * whether the train can run. A train that fails one of these steps stops and an
+ * {@link Incident} gets recorded.
+ * <p>
+ * The trains do not share any state, so they can get simulated in independent shards
+ * on several threads. The result only depends on the timetables and the seed, not on
+ * the number of threads. The trains get loaded and unloaded in place, so every
+ * simulation should get started with freshly composed trains.
+ */
+public class Simulation {
+
+    private final List<Timetable> timetables;
+    private final long[] trainSeeds;
+    private final int maxDelay;
+
+    /**
+     * @param maxDelay the maximum random delay (in minutes) a train can pick up on each leg
+     */
+    public Simulation(List<Timetable> timetables, long seed, int maxDelay) {
+        if (maxDelay < 0) {
+            throw new SimulationException("maxDelay argument must be >= 0!");
+        }
+        Set<String> trainNames = new HashSet<>();
+        for (Timetable timetable : timetables) {
+            if (!trainNames.add(timetable.getTrain().getName())) {
+                throw new SimulationException("There is more than one timetable for the train '" + timetable.getTrain().getName() + "'!");
+            }
+        }
+        this.timetables = new ArrayList<>(timetables);
+        // every train gets its own stream of random numbers, derived from its position in
+        // the timetables and not from the scheduling order or the thread running it
+        SplittableRandom random = new SplittableRandom(seed);
+        trainSeeds = new long[timetables.size()];
+        for (int i = 0; i < trainSeeds.length; i++) {
+            trainSeeds[i] = random.nextLong();
+        }
+        this.maxDelay = maxDelay;
+    }
+
+    public SimulationResult run() {
+        List<Integer> all = new ArrayList<>();
+        for (int i = 0; i < timetables.size(); i++) {
+            all.add(i);
+        }
+        return runShard(all);
+    }
+
+    public SimulationResult run(int threads) {
+        if (threads < 1) {
+            throw new SimulationException("threads argument must be > 0!");
+        }
+        if (threads == 1 || timetables.size() < 2) {
+            return run();
+        }
+        List<List<Integer>> shards = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            shards.add(new ArrayList<>());
+        }
+        for (int i = 0; i < timetables.size(); i++) {
+            shards.get(i % threads).add(i);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<SimulationResult>> futures = new ArrayList<>();
+            for (List<Integer> shard : shards) {
+                futures.add(executor.submit(() -> runShard(shard)));
+            }
+            List<SimulationResult> results = new ArrayList<>();
+            for (Future<SimulationResult> future : futures) {
+                results.add(future.get());
+            }
+            return SimulationResult.merge(results);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SimulationException("The simulation got interrupted!", e);
+        } catch (ExecutionException e) {
+            throw new SimulationException("The simulation failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private SimulationResult runShard(List<Integer> shard) {
+        PriorityQueue<TrainEvent> queue = new PriorityQueue<>(Math.max(1, shard.size()));
+        for (int index : shard) {
+            Timetable timetable = timetables.get(index);
+            queue.add(new TrainEvent(timetable.getStops().get(0).getArrival(), new TrainRun(timetable, trainSeeds[index]), 0));
+        }
+
+        long processedEvents = 0;
+        int finishedTrains = 0;
+        long totalDelay = 0;
+        List<Incident> incidents = new ArrayList<>();
+        TrainEvent event;
+        while ((event = queue.poll()) != null) {
+            processedEvents++;
+            TrainRun run = event.getRun();
+            List<Stop> stops = run.getTimetable().getStops();
+            Stop stop = stops.get(event.getStopIndex());
+            Train train = run.getTimetable().getTrain();
+            String problem = checkLoads(train, stop);
+            if (problem != null) {
+                incidents.add(new Incident(event.getTime(), train.getName(), stop.getStation(), problem));
+                totalDelay += run.getDelay();
+                continue;
+            }
+            train.removePassengers(stop.getPassengersOff())
+                    .removeFreight(stop.getFreightOff())
+                    .addPassengers(stop.getPassengersOn())
+                    .addFreight(stop.getFreightOn());
+
+            int nextIndex = event.getStopIndex() + 1;
+            if (nextIndex == stops.size()) {
+                finishedTrains++;
+                totalDelay += run.getDelay();
+            } else if (!train.canTrainRun()) {
+                incidents.add(new Incident(event.getTime(), train.getName(), stop.getStation(), "The engines are too weak for the leg to '" + stops.get(nextIndex).getStation() + "'!"));
+                totalDelay += run.getDelay();
+            } else {
+                long delay = run.addRandomDelay(maxDelay);
+                queue.add(new TrainEvent(stops.get(nextIndex).getArrival() + delay, run, nextIndex));
+            }
+        }
+        return new SimulationResult(processedEvents, finishedTrains, totalDelay, incidents);
+    }
+
+    /**
+     * checks all loads of the stop before the train gets changed, so that a stopped train
+     * keeps the loads it had when it arrived
+     */
+    private static String checkLoads(Train train, Stop stop) {
+        if (stop.getPassengersOff() > train.getPassengerCount()) {
+            return "Only " + train.getPassengerCount() + " passengers are on board, " + stop.getPassengersOff() + " can not leave the train!";
+        }
+        if (stop.getFreightOff() > train.getFreightWeight()) {
+            return "Only " + train.getFreightWeight() + " freight is on board, " + stop.getFreightOff() + " can not get unloaded!";
+        }
+        if (train.getPassengerCount() - stop.getPassengersOff() + stop.getPassengersOn() > train.getPassengerCapacity()) {
+            return "Too manny passengers!";
+        }
+        if (train.getFreightWeight() - stop.getFreightOff() + stop.getFreightOn() > train.getFreightCapacity()) {
+            return "Too much freightWeight!";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,60 @@
+package at.dcosta.trains.simulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class SimulationResult {
+
+    private final long processedEvents;
+    private final int finishedTrains;
+    private final long totalDelay;
+    private final List<Incident> incidents;
+
+    SimulationResult(long processedEvents, int finishedTrains, long totalDelay, List<Incident> incidents) {
+        this.processedEvents = processedEvents;
+        this.finishedTrains = finishedTrains;
+        this.totalDelay = totalDelay;
+        this.incidents = new ArrayList<>(incidents);
+        this.incidents.sort(Incident.ORDER);
+    }
+
+    static SimulationResult merge(List<SimulationResult> results) {
+        long processedEvents = 0;
+        int finishedTrains = 0;
+        long totalDelay = 0;
+        List<Incident> incidents = new ArrayList<>();
+        for (SimulationResult result : results) {
+            processedEvents += result.processedEvents;
+            finishedTrains += result.finishedTrains;
+            totalDelay += result.totalDelay;
+            incidents.addAll(result.incidents);
+        }
+        return new SimulationResult(processedEvents, finishedTrains, totalDelay, incidents);
+    }
+
+    public long getProcessedEvents() {
+        return processedEvents;
+    }
+
+    /**
+     * number of trains that reached the last stop of their timetable
+     */
+    public int getFinishedTrains() {
+        return finishedTrains;
+    }
+
+    /**
+     * sum of the delays (in minutes) all trains had at their last processed stop
+     */
+    public long getTotalDelay() {
+        return totalDelay;
+    }
+
+    /**
+     * the incidents ordered by time, train name and station
+     */
+    public List<Incident> getIncidents() {
+        return Collections.unmodifiableList(incidents);
+    }
+}
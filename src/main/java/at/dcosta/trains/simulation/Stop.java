@@ -0,0 +1,27 @@
+package at.dcosta.trains.simulation;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A scheduled stop of a train at a station. At the stop passengers and freight
+ * are first unloaded and then loaded.
+ */
+@Getter
+@Builder
+@ToString
+public class Stop {
+
+    private final String station;
+
+    /**
+     * scheduled arrival in minutes since the start of the simulation
+     */
+    private final long arrival;
+
+    private final int passengersOff;
+    private final int passengersOn;
+    private final int freightOff;
+    private final int freightOn;
+}
@@ -0,0 +1,46 @@
+package at.dcosta.trains.simulation;
+
+import at.dcosta.trains.error.SimulationException;
+import at.dcosta.trains.model.Train;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class Timetable {
+
+    private final Train train;
+    private final List<Stop> stops;
+
+    public Timetable(Train train, List<Stop> stops) {
+        if (train == null) {
+            throw new SimulationException("Train of a timetable must not be null!");
+        }
+        if (stops == null || stops.isEmpty()) {
+            throw new SimulationException("The timetable of train '" + train.getName() + "' must contain at least one stop!");
+        }
+        long previousArrival = Long.MIN_VALUE;
+        for (Stop stop : stops) {
+            if (stop.getStation() == null || stop.getStation().isBlank()) {
+                throw new SimulationException("The timetable of train '" + train.getName() + "' contains a stop without station!");
+            }
+            if (stop.getPassengersOff() < 0 || stop.getPassengersOn() < 0 || stop.getFreightOff() < 0 || stop.getFreightOn() < 0) {
+                throw new SimulationException("The timetable of train '" + train.getName() + "' contains negative loads at station '" + stop.getStation() + "'!");
+            }
+            if (stop.getArrival() <= previousArrival) {
+                throw new SimulationException("The stops of train '" + train.getName() + "' are not in chronological order at station '" + stop.getStation() + "'!");
+            }
+            previousArrival = stop.getArrival();
+        }
+        this.train = train;
+        this.stops = new ArrayList<>(stops);
+    }
+
+    public Train getTrain() {
+        return train;
+    }
+
+    public List<Stop> getStops() {
+        return Collections.unmodifiableList(stops);
+    }
+}
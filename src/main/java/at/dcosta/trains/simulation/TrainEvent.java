@@ -0,0 +1,43 @@
+package at.dcosta.trains.simulation;
+
+/**
+ * Arrival of a train at the stop with the given index of its timetable. Events are
+ * ordered by time, ties are broken by train name and stop index so the order does
+ * not depend on the order the events were scheduled in.
+ */
+class TrainEvent implements Comparable<TrainEvent> {
+
+    private final long time;
+    private final TrainRun run;
+    private final int stopIndex;
+
+    TrainEvent(long time, TrainRun run, int stopIndex) {
+        this.time = time;
+        this.run = run;
+        this.stopIndex = stopIndex;
+    }
+
+    long getTime() {
+        return time;
+    }
+
+    TrainRun getRun() {
+        return run;
+    }
+
+    int getStopIndex() {
+        return stopIndex;
+    }
+
+    @Override
+    public int compareTo(TrainEvent other) {
+        int result = Long.compare(time, other.time);
+        if (result == 0) {
+            result = run.getTrainName().compareTo(other.run.getTrainName());
+        }
+        if (result == 0) {
+            result = Integer.compare(stopIndex, other.stopIndex);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,37 @@
+package at.dcosta.trains.simulation;
+
+import java.util.SplittableRandom;
+
+/**
+ * The state of one train while it works through its timetable.
+ */
+class TrainRun {
+
+    private final Timetable timetable;
+    private final SplittableRandom random;
+    private long delay;
+
+    TrainRun(Timetable timetable, long seed) {
+        this.timetable = timetable;
+        this.random = new SplittableRandom(seed);
+    }
+
+    Timetable getTimetable() {
+        return timetable;
+    }
+
+    String getTrainName() {
+        return timetable.getTrain().getName();
+    }
+
+    long getDelay() {
+        return delay;
+    }
+
+    long addRandomDelay(int maxDelay) {
+        if (maxDelay > 0) {
+            delay += random.nextInt(maxDelay + 1);
+        }
+        return delay;
+    }
+}
@@ -0,0 +1,103 @@
+package at.dcosta.trains.configuration;
+
+import at.dcosta.trains.error.TrainBuilderException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConfigurationReaderTest {
+
+    private static final String ENGINE_SERIAL = "ec52b6d8-6d5d-4c86-a7a0-411e5c551b57";
+    private static final String WAGGON_SERIAL = "7c253998-61f3-4a92-85f1-3c7163cb5c6d";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReaderIsReusable() throws IOException {
+        ConfigurationReader reader = new ConfigurationReader();
+        for (int i = 0; i < 3; i++) {
+            TrainDepot depot = reader.readDepot(new ByteArrayInputStream(yard(ENGINE_SERIAL, WAGGON_SERIAL).getBytes(StandardCharsets.UTF_8)));
+            assertEquals(1, depot.getEngines().size());
+            assertEquals(1, depot.getWaggons().size());
+        }
+    }
+
+    @Test
+    void testDuplicateSerialInOneFile() {
+        String yaml = yard(ENGINE_SERIAL, ENGINE_SERIAL);
+        TrainBuilderException e = assertThrows(TrainBuilderException.class, () -> ConfigurationReader.read(new ByteArrayInputStream(yaml.getBytes(StandardCharsets.UTF_8))));
+        assertTrue(e.getMessage().contains(ENGINE_SERIAL));
+    }
+
+    @Test
+    void testReadDirectory() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(directory.resolve(String.format("yard%02d.yaml", i)), yard(UUID.randomUUID().toString(), UUID.randomUUID().toString()));
+        }
+        Files.writeString(directory.resolve("notes.txt"), "not a depot");
+        Path first = directory.resolve("yard00.yaml");
+        Files.writeString(first, yard(ENGINE_SERIAL, WAGGON_SERIAL));
+
+        TrainDepot depot = new ConfigurationReader().readDirectory(directory, 4);
+        assertEquals(20, depot.getEngines().size());
+        assertEquals(20, depot.getWaggons().size());
+        // the fragments are merged in the order of the file names
+        assertEquals(UUID.fromString(ENGINE_SERIAL), depot.getEngines().get(0).getSerialNumber());
+        assertEquals(UUID.fromString(WAGGON_SERIAL), depot.getWaggons().get(0).getSerialNumber());
+    }
+
+    @Test
+    void testDuplicateSerialAcrossFiles() throws IOException {
+        Path north = directory.resolve("north.yaml");
+        Path south = directory.resolve("south.yaml");
+        Files.writeString(north, yard(ENGINE_SERIAL, WAGGON_SERIAL));
+        Files.writeString(south, yard(UUID.randomUUID().toString(), WAGGON_SERIAL));
+
+        TrainBuilderException e = assertThrows(TrainBuilderException.class, () -> new ConfigurationReader().readFiles(List.of(north, south), 2));
+        assertTrue(e.getMessage().contains(north.toString()));
+        assertTrue(e.getMessage().contains(south.toString()));
+    }
+
+    @Test
+    void testInvalidVehicleInFile() throws IOException {
+        Path invalid = directory.resolve("invalid.yaml");
+        Files.writeString(invalid, yard(ENGINE_SERIAL, WAGGON_SERIAL).replace("emptyWeight: 1000", "emptyWeight: 10"));
+
+        TrainBuilderException e = assertThrows(TrainBuilderException.class, () -> new ConfigurationReader().readFiles(List.of(invalid), 1));
+        assertTrue(e.getMessage().startsWith(invalid.toString()));
+    }
+
+    private static String yard(String engineSerial, String waggonSerial) {
+        return "engines:\n"
+                + "  - emptyWeight: 2000\n"
+                + "    length: 15\n"
+                + "    traction: 20000\n"
+                + "    passengerCapacity: 5\n"
+                + "    freightCapacity: 1000\n"
+                + "    typeName: Coole Diesel-Lok\n"
+                + "    manufacturer: OEBB\n"
+                + "    manufactureYear: 2000\n"
+                + "    serialNumber: " + engineSerial + "\n"
+                + "    type: DIESEL\n"
+                + "waggons:\n"
+                + "  - emptyWeight: 1000\n"
+                + "    length: 30\n"
+                + "    passengerCapacity: 0\n"
+                + "    freightCapacity: 5000\n"
+                + "    typeName: Frachter 1\n"
+                + "    manufacturer: ich\n"
+                + "    manufactureYear: 2010\n"
+                + "    serialNumber: " + waggonSerial + "\n"
+                + "    type: FREIGHT_CAR\n";
+    }
+}
@@ -0,0 +1,65 @@
+package at.dcosta.trains.configuration;
+
+import at.dcosta.trains.model.EngineType;
+import at.dcosta.trains.model.WaggonType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Depots for the tests, always read through the {@link ConfigurationReader}.
+ */
+public class DepotFixtures {
+
+    private DepotFixtures() {
+    }
+
+    /**
+     * reads the depot from the given test resource, e.g. trainDepot.yaml
+     */
+    public static TrainDepot read(String resource) {
+        try (InputStream in = DepotFixtures.class.getClassLoader().getResourceAsStream(resource)) {
+            return ConfigurationReader.read(in);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * generates a depot with random (but valid) vehicles, the same random numbers always
+     * lead to the same depot
+     */
+    public static TrainDepot generate(Random random, int engineCount, int waggonCount) {
+        StringBuilder yaml = new StringBuilder("engines:\n");
+        for (int i = 0; i < engineCount; i++) {
+            EngineType type = EngineType.values()[random.nextInt(EngineType.values().length)];
+            appendVehicle(yaml, random, type.name()).append("    traction: ").append(5000 + random.nextInt(200000)).append('\n');
+        }
+        yaml.append("waggons:\n");
+        for (int i = 0; i < waggonCount; i++) {
+            WaggonType type = WaggonType.values()[random.nextInt(WaggonType.values().length)];
+            appendVehicle(yaml, random, type.name());
+        }
+        try {
+            return ConfigurationReader.read(new ByteArrayInputStream(yaml.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static StringBuilder appendVehicle(StringBuilder yaml, Random random, String type) {
+        return yaml.append("  - emptyWeight: ").append(1000 + random.nextInt(50000)).append('\n')
+                .append("    length: ").append(10 + random.nextInt(20)).append('\n')
+                .append("    passengerCapacity: ").append(random.nextInt(3) == 0 ? 0 : random.nextInt(120)).append('\n')
+                .append("    freightCapacity: ").append(random.nextInt(3) == 0 ? 0 : random.nextInt(20000)).append('\n')
+                .append("    typeName: ").append(type.toLowerCase()).append('\n')
+                .append("    manufacturer: stress\n")
+                .append("    manufactureYear: ").append(1900 + random.nextInt(120)).append('\n')
+                .append("    serialNumber: ").append(new UUID(random.nextLong(), random.nextLong())).append('\n')
+                .append("    type: ").append(type).append('\n');
+    }
+}
@@ -0,0 +1,462 @@
+package at.dcosta.trains.depot;
+
+import at.dcosta.trains.configuration.DepotFixtures;
+import at.dcosta.trains.configuration.TrainDepot;
+import at.dcosta.trains.error.DepotException;
+import at.dcosta.trains.error.DepotTransferException;
+import at.dcosta.trains.model.Engine;
+import at.dcosta.trains.model.Train;
+import at.dcosta.trains.model.Vehicle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartitionedDepotTest {
+
+    private DepotNode north;
+    private DepotNode south;
+    private DepotNode east;
+
+    @BeforeEach
+    void createNodes() {
+        north = new DepotNode("north", DepotFixtures.generate(new Random(1), 2, 10));
+        south = new DepotNode("south", DepotFixtures.generate(new Random(2), 1, 5));
+        east = new DepotNode("east", DepotFixtures.generate(new Random(3), 1, 5));
+    }
+
+    @Test
+    void testLocalTransfer() throws IOException {
+        LocalTransport transport = new LocalTransport().register(north).register(south);
+        try (PartitionedDepot depot = new PartitionedDepot(transport, List.of("north", "south"))) {
+            transferAndLookup(depot);
+        }
+    }
+
+    @Test
+    void testSocketTransfer() throws IOException {
+        try (DepotServer northServer = new DepotServer(north);
+             DepotServer southServer = new DepotServer(south)) {
+            SocketTransport transport = new SocketTransport()
+                    .register("north", northServer.getAddress())
+                    .register("south", southServer.getAddress());
+            try (PartitionedDepot depot = new PartitionedDepot(transport, List.of("north", "south"))) {
+                transferAndLookup(depot);
+            }
+        }
+    }
+
+    @Test
+    void testLocalLookupReturnsCopies() throws IOException {
+        LocalTransport transport = new LocalTransport().register(north).register(south);
+        try (PartitionedDepot depot = new PartitionedDepot(transport, List.of("north", "south"))) {
+            List<UUID> northSerials = serials(north);
+            north.createTrain("Shunter", northSerials.get(0));
+
+            Vehicle engine = depot.lookup(northSerials.subList(0, 1)).get(northSerials.get(0));
+            assertNotSame(north.getVehicle(northSerials.get(0)), engine);
+            assertEquals(northSerials.get(0), engine.getSerialNumber());
+            assertNull(engine.getMemberOfTrain());
+        }
+    }
+
+    @Test
+    void testVehicleOfTrainStaysInNode() throws IOException {
+        LocalTransport transport = new LocalTransport().register(north).register(south);
+        try (PartitionedDepot depot = new PartitionedDepot(transport, List.of("north", "south"))) {
+            List<UUID> southSerials = serials(south);
+            Train train = south.createTrain("Shunter", southSerials.get(0));
+            south.addToTrain(train, southSerials.get(1));
+
+            // the first waggon is part of the train, so the batch must not leave the node
+            assertThrows(DepotException.class, () -> depot.transfer(southSerials.subList(1, 3), "north"));
+            assertEquals(6, south.getVehicleCount());
+            assertEquals("south", depot.getOwner(southSerials.get(2)));
+
+            depot.transfer(southSerials.subList(2, 3), "north");
+            assertEquals("north", depot.getOwner(southSerials.get(2)));
+
+            south.removeFromTrain(train, southSerials.get(1));
+            depot.transfer(southSerials.subList(1, 2), "north");
+            assertEquals("north", depot.getOwner(southSerials.get(1)));
+        }
+    }
+
+    @Test
+    void testUnknownVehicle() throws IOException {
+        LocalTransport transport = new LocalTransport().register(north).register(south);
+        try (PartitionedDepot depot = new PartitionedDepot(transport, List.of("north", "south"))) {
+            assertNull(depot.getOwner(UUID.randomUUID()));
+            assertThrows(DepotException.class, () -> depot.lookup(List.of(UUID.randomUUID())));
+            assertThrows(DepotException.class, () -> depot.transfer(serials(north), "east"));
+        }
+    }
+
+    @Test
+    void testLostAcceptResponse() throws IOException {
+        FaultyTransport transport = new FaultyTransport(new LocalTransport().register(north).register(south));
+        try (PartitionedDepot depot = new PartitionedDepot(transport, List.of("north", "south"))) {
+            List<UUID> moved = serials(north).subList(2, 5);
+            transport.fail("south", DepotRequest.Operation.ACCEPT, Fault.LOSE_RESPONSE);
+
+            // the target accepted the vehicles, only the response got lost
+            depot.transfer(moved, "south");
+            moved.forEach(serial -> assertEquals("south", depot.getOwner(serial)));
+            moved.forEach(serial -> assertNull(north.getVehicle(serial)));
+            moved.forEach(serial -> assertNotNull(south.getVehicle(serial)));
+        }
+    }
+
+    @Test
+    void testUnreachableTargetGivesBack() throws IOException {
+        FaultyTransport transport = new FaultyTransport(new LocalTransport().register(north).register(south));
+        try (PartitionedDepot depot = new PartitionedDepot(transport, List.of("north", "south"))) {
+            List<UUID> moved = serials(north).subList(2, 5);
+            transport.fail("south", DepotRequest.Operation.ACCEPT, Fault.UNREACHABLE);
+
+            // the target did not get the vehicles, so they go back to the source
+            assertThrows(IOException.class, () -> depot.transfer(moved, "south"));
+            moved.forEach(serial -> assertEquals("north", depot.getOwner(serial)));
+            moved.forEach(serial -> assertNotNull(north.getVehicle(serial)));
+            moved.forEach(serial -> assertNull(south.getVehicle(serial)));
+        }
+    }
+
+    @Test
+    void testTargetInUnknownStateOrphansVehicles() throws IOException {
+        FaultyTransport transport = new FaultyTransport(new LocalTransport().register(north).register(south));
+        try (PartitionedDepot depot = new PartitionedDepot(transport, List.of("north", "south"))) {
+            List<UUID> moved = serials(north).subList(2, 5);
+            transport.fail("south", DepotRequest.Operation.ACCEPT, Fault.LOSE_RESPONSE);
+            transport.fail("south", DepotRequest.Operation.STATUS, Fault.UNREACHABLE);
+
+            // it is unknown whether the target got the vehicles, so they must not go back to the source
+            DepotTransferException e = assertThrows(DepotTransferException.class, () -> depot.transfer(moved, "south"));
+            assertEquals(moved, e.getOrphanedSerials());
+            moved.forEach(serial -> assertNull(depot.getOwner(serial)));
+            moved.forEach(serial -> assertNull(north.getVehicle(serial)));
+
+            // the inventory of the nodes shows where they are
+            assertTrue(depot.reconcile(e.getOrphanedSerials()).isEmpty());
+            moved.forEach(serial -> assertEquals("south", depot.getOwner(serial)));
+            depot.transfer(moved, "north");
+            assertEquals(12, north.getVehicleCount());
+        }
+    }
+
+    @Test
+    void testDelayedAcceptGetsCancelled() throws Exception {
+        FaultyTransport transport = new FaultyTransport(new LocalTransport().register(north).register(south));
+        try (PartitionedDepot depot = new PartitionedDepot(transport, List.of("north", "south"), 100)) {
+            List<UUID> moved = serials(north).subList(2, 5);
+            transport.delay("south", DepotRequest.Operation.ACCEPT, 300);
+
+            // the late ACCEPT reaches the target after the vehicles went back to the source
+            assertThrows(IOException.class, () -> depot.transfer(moved, "south"));
+            Thread.sleep(500);
+            moved.forEach(serial -> assertEquals("north", depot.getOwner(serial)));
+            moved.forEach(serial -> assertNotNull(north.getVehicle(serial)));
+            moved.forEach(serial -> assertNull(south.getVehicle(serial)));
+            assertEquals(6, south.getVehicleCount());
+        }
+    }
+
+    @Test
+    void testDelayedReleaseGetsCancelled() throws Exception {
+        FaultyTransport transport = new FaultyTransport(new LocalTransport().register(north).register(south));
+        try (PartitionedDepot depot = new PartitionedDepot(transport, List.of("north", "south"), 100)) {
+            List<UUID> moved = serials(north).subList(2, 5);
+            transport.delay("north", DepotRequest.Operation.RELEASE, 300);
+
+            // the late RELEASE must not take the vehicles away from the source
+            assertThrows(IOException.class, () -> depot.transfer(moved, "south"));
+            Thread.sleep(500);
+            moved.forEach(serial -> assertEquals("north", depot.getOwner(serial)));
+            moved.forEach(serial -> assertNotNull(north.getVehicle(serial)));
+            assertEquals(6, south.getVehicleCount());
+
+            transport.delay("north", DepotRequest.Operation.RELEASE, 0);
+            depot.transfer(moved, "south");
+            assertEquals(9, south.getVehicleCount());
+        }
+    }
+
+    @Test
+    void testSlowResponseGetsApplied() throws IOException {
+        FaultyTransport transport = new FaultyTransport(new LocalTransport().register(north).register(south));
+        try (PartitionedDepot depot = new PartitionedDepot(transport, List.of("north", "south"), 100)) {
+            List<UUID> moved = serials(north).subList(2, 5);
+            transport.fail("south", DepotRequest.Operation.ACCEPT, Fault.SLOW_RESPONSE);
+
+            // the target applied the ACCEPT before the timeout, only its response is late
+            depot.transfer(moved, "south");
+            moved.forEach(serial -> assertEquals("south", depot.getOwner(serial)));
+            moved.forEach(serial -> assertNull(north.getVehicle(serial)));
+            moved.forEach(serial -> assertNotNull(south.getVehicle(serial)));
+        }
+    }
+
+    @Test
+    void testRefusedSourceRollsBackOtherSources() throws IOException {
+        LocalTransport transport = new LocalTransport().register(north).register(south).register(east);
+        try (PartitionedDepot depot = new PartitionedDepot(transport, List.of("north", "south", "east"))) {
+            List<UUID> eastSerials = serials(east);
+            east.createTrain("Shunter", eastSerials.get(0));
+            List<UUID> moved = new ArrayList<>(serials(north).subList(2, 5));
+            moved.add(eastSerials.get(0));
+
+            // the east node refuses to release its engine, so nothing moves
+            assertThrows(DepotException.class, () -> depot.transfer(moved, "south"));
+            moved.subList(0, 3).forEach(serial -> assertEquals("north", depot.getOwner(serial)));
+            moved.subList(0, 3).forEach(serial -> assertNotNull(north.getVehicle(serial)));
+            assertEquals(6, south.getVehicleCount());
+            assertEquals(6, east.getVehicleCount());
+        }
+    }
+
+    @Test
+    void testFailedGiveBackReportsOrphans() throws IOException {
+        FaultyTransport transport = new FaultyTransport(new LocalTransport().register(north).register(south));
+        try (PartitionedDepot depot = new PartitionedDepot(transport, List.of("north", "south"))) {
+            List<UUID> moved = serials(north).subList(2, 5);
+            transport.fail("south", DepotRequest.Operation.ACCEPT, Fault.REFUSE);
+            transport.fail("north", DepotRequest.Operation.ACCEPT, Fault.UNREACHABLE);
+            transport.fail("north", DepotRequest.Operation.STATUS, Fault.UNREACHABLE);
+
+            DepotTransferException e = assertThrows(DepotTransferException.class, () -> depot.transfer(moved, "south"));
+            assertEquals(moved, e.getOrphanedSerials());
+            // the refusal of the target is the cause, the failed give back is attached
+            assertTrue(e.getCause().getMessage().contains("refused"));
+            assertTrue(e.getCause().getSuppressed().length > 0);
+
+            // no node got the vehicles back
+            assertEquals(moved, depot.reconcile(e.getOrphanedSerials()));
+            moved.forEach(serial -> assertNull(depot.getOwner(serial)));
+        }
+    }
+
+    @Test
+    void testLookupsDuringTransfers() throws Exception {
+        LocalTransport transport = new LocalTransport().register(north).register(south);
+        try (PartitionedDepot depot = new PartitionedDepot(transport, List.of("north", "south"))) {
+            List<UUID> moving = serials(north).subList(2, 8);
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            CountDownLatch start = new CountDownLatch(1);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 200; i++) {
+                        depot.transfer(moving, i % 2 == 0 ? "south" : "north");
+                    }
+                    return null;
+                }));
+                for (int t = 0; t < 3; t++) {
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < 200; i++) {
+                            assertEquals(moving.size(), depot.lookup(moving).values().stream().filter(vehicle -> vehicle != null).count());
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get(1, TimeUnit.MINUTES);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            assertEquals(18, north.getVehicleCount() + south.getVehicleCount());
+        }
+    }
+
+    @Test
+    void testComposeTrainThroughSeveralNodes() throws Exception {
+        List<UUID> northSerials = serials(north);
+        List<UUID> southSerials = serials(south);
+        Train train = south.createTrain("Cross-Yard", southSerials.get(0));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            Future<?> fromNorth = executor.submit(() -> compose(start, north, train, northSerials.subList(2, 12)));
+            Future<?> fromSouth = executor.submit(() -> compose(start, south, train, southSerials.subList(1, 6)));
+            start.countDown();
+            fromNorth.get(1, TimeUnit.MINUTES);
+            fromSouth.get(1, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(16, train.getVehicleCount());
+    }
+
+    private static Void compose(CountDownLatch start, DepotNode node, Train train, List<UUID> serials) throws InterruptedException {
+        start.await();
+        for (int i = 0; i < 200; i++) {
+            serials.forEach(serial -> node.addToTrain(train, serial));
+            if (i < 199) {
+                serials.forEach(serial -> node.removeFromTrain(train, serial));
+            }
+        }
+        return null;
+    }
+
+    @Test
+    void testHangingNodeTimesOut() throws IOException {
+        try (ServerSocket hanging = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            SocketTransport transport = new SocketTransport(1000, 200)
+                    .register("north", (InetSocketAddress) hanging.getLocalSocketAddress());
+            // the node accepts the connection but never answers
+            assertThrows(IOException.class, () -> new PartitionedDepot(transport, List.of("north")));
+        }
+
+        DepotTransport blocking = (node, request) -> {
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("interrupted");
+        };
+        assertThrows(IOException.class, () -> new PartitionedDepot(blocking, List.of("north"), 200));
+    }
+
+    @Test
+    void testServerClosesIdleConnection() throws IOException {
+        try (DepotServer server = new DepotServer(north, 200);
+             Socket socket = new Socket(server.getAddress().getAddress(), server.getAddress().getPort())) {
+            socket.setSoTimeout(10_000);
+            try (InputStream in = socket.getInputStream()) {
+                // the client never sends a request, the server gives up and closes the connection
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    private void transferAndLookup(PartitionedDepot depot) throws IOException {
+        List<UUID> northSerials = serials(north);
+        List<UUID> southSerials = serials(south);
+        assertEquals("north", depot.getOwner(northSerials.get(0)));
+        assertEquals("south", depot.getOwner(southSerials.get(0)));
+
+        // plan a train from both yards: an engine from the south and waggons from the north
+        List<UUID> planned = new ArrayList<>(List.of(southSerials.get(0)));
+        planned.addAll(northSerials.subList(2, 6));
+        Map<UUID, Vehicle> vehicles = depot.lookup(planned);
+        assertEquals(planned, new ArrayList<>(vehicles.keySet()));
+        Engine engine = (Engine) vehicles.get(southSerials.get(0));
+        assertEquals(((Engine) south.getVehicle(southSerials.get(0))).getTraction(), engine.getTraction());
+
+        depot.transfer(planned, "south");
+        assertEquals(10, south.getVehicleCount());
+        assertEquals(8, north.getVehicleCount());
+        planned.forEach(serial -> assertEquals("south", depot.getOwner(serial)));
+
+        Train train = south.createTrain("Cross-Yard", southSerials.get(0));
+        northSerials.subList(2, 6).forEach(serial -> south.addToTrain(train, serial));
+        assertEquals(5, train.getVehicleCount());
+    }
+
+    private static List<UUID> serials(DepotNode node) {
+        TrainDepot inventory = node.handle(DepotRequest.builder().operation(DepotRequest.Operation.INVENTORY).build()).getVehicles();
+        List<UUID> serials = new ArrayList<>();
+        inventory.getEngines().forEach(engine -> serials.add(engine.getSerialNumber()));
+        inventory.getWaggons().forEach(waggon -> serials.add(waggon.getSerialNumber()));
+        return serials;
+    }
+
+    private enum Fault {
+        /**
+         * the request gets applied, but the response gets lost
+         */
+        LOSE_RESPONSE,
+        /**
+         * the request does not reach the node
+         */
+        UNREACHABLE,
+        /**
+         * the node answers with an error
+         */
+        REFUSE,
+        /**
+         * the request gets applied, but the response arrives late
+         */
+        SLOW_RESPONSE
+    }
+
+    private static class FaultyTransport implements DepotTransport {
+        private final DepotTransport delegate;
+        private final Map<String, Fault> faults = new ConcurrentHashMap<>();
+        private final Map<String, Long> delays = new ConcurrentHashMap<>();
+
+        FaultyTransport(DepotTransport delegate) {
+            this.delegate = delegate;
+        }
+
+        void fail(String node, DepotRequest.Operation operation, Fault fault) {
+            faults.put(node + ":" + operation, fault);
+        }
+
+        /**
+         * the requests reach the node late, an interrupt does not stop them
+         */
+        void delay(String node, DepotRequest.Operation operation, long millis) {
+            delays.put(node + ":" + operation, millis);
+        }
+
+        @Override
+        public DepotResponse send(String node, DepotRequest request) throws IOException {
+            sleepUninterruptibly(delays.getOrDefault(node + ":" + request.getOperation(), 0L));
+            Fault fault = faults.get(node + ":" + request.getOperation());
+            if (fault == null) {
+                return delegate.send(node, request);
+            }
+            switch (fault) {
+                case LOSE_RESPONSE:
+                    delegate.send(node, request);
+                    throw new IOException("response of " + node + " lost");
+                case SLOW_RESPONSE:
+                    DepotResponse response = delegate.send(node, request);
+                    sleepUninterruptibly(300);
+                    return response;
+                case UNREACHABLE:
+                    throw new IOException(node + " unreachable");
+                default:
+                    return DepotResponse.builder().error(node + ": refused").build();
+            }
+        }
+    }
+
+    private static void sleepUninterruptibly(long millis) {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        boolean interrupted = false;
+        for (long left = millis; left > 0; left = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime())) {
+            try {
+                Thread.sleep(left);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
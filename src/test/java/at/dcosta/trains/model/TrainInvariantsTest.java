@@ -0,0 +1,566 @@
+package at.dcosta.trains.model;
+
+import at.dcosta.trains.configuration.DepotFixtures;
+import at.dcosta.trains.configuration.TrainDepot;
+import at.dcosta.trains.error.TrainBuilderException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs long random sequences of operations against trains composed from a generated
+ * depot and checks the invariants of the trains after every step. The operations are
+ * derived from a seed, a failing run reports the seed and the last operations. The
+ * operations of a run can get repeated with -Dtrains.stress.seed=&lt;seed&gt;.
+ */
+public class TrainInvariantsTest {
+
+    private static final long DEFAULT_SEED = 20230401L;
+    private static final int SEEDS = 5;
+    private static final int STEPS = 3000;
+    private static final int REPORTED_STEPS = 20;
+
+    private static final int THREADS = 8;
+    private static final int STEPS_PER_THREAD = 5000;
+
+    @Test
+    void testRandomOperations() {
+        for (long seed : seeds()) {
+            new SequentialRun(seed).run();
+        }
+    }
+
+    @Test
+    void testConcurrentOperations() throws Exception {
+        for (long seed : seeds()) {
+            new ConcurrentRun(seed, Locking.fromSystemProperty()).run();
+        }
+    }
+
+    private static List<Long> seeds() {
+        String seed = System.getProperty("trains.stress.seed");
+        if (seed != null) {
+            return List.of(Long.parseLong(seed));
+        }
+        Random random = new Random(DEFAULT_SEED);
+        List<Long> seeds = new ArrayList<>();
+        for (int i = 0; i < SEEDS; i++) {
+            seeds.add(random.nextLong());
+        }
+        return seeds;
+    }
+
+    /**
+     * Compares every operation with a naive model of the trains: an operation must
+     * fail exactly when the model says so and must not change the train if it fails.
+     */
+    private static class SequentialRun {
+        private final long seed;
+        private final Random random;
+        private final TrainDepot depot;
+        private final List<Train> trains = new ArrayList<>();
+        private final Map<Train, Set<Vehicle>> modelVehicles = new HashMap<>();
+        private final Map<Train, Integer> modelPassengers = new HashMap<>();
+        private final Map<Train, Integer> modelFreight = new HashMap<>();
+        private final LinkedList<String> lastOperations = new LinkedList<>();
+
+        SequentialRun(long seed) {
+            this.seed = seed;
+            this.random = new Random(seed);
+            this.depot = DepotFixtures.generate(random, 8, 30);
+            for (int i = 0; i < 4; i++) {
+                Train train = new Train("Train " + i, depot.getEngines().get(i));
+                trains.add(train);
+                modelVehicles.put(train, new HashSet<>(train.getVehicles()));
+                modelPassengers.put(train, 0);
+                modelFreight.put(train, 0);
+            }
+        }
+
+        void run() {
+            for (int step = 0; step < STEPS; step++) {
+                Train train = trains.get(random.nextInt(trains.size()));
+                String operation;
+                try {
+                    operation = step(train);
+                } catch (RuntimeException | AssertionError e) {
+                    throw new AssertionError(report(step, e.toString()), e);
+                }
+                lastOperations.add(operation);
+                if (lastOperations.size() > REPORTED_STEPS) {
+                    lastOperations.removeFirst();
+                }
+                String violation = checkInvariants(trains, allVehicles(depot));
+                if (violation == null) {
+                    violation = checkModel();
+                }
+                if (violation != null) {
+                    fail(report(step, violation));
+                }
+            }
+        }
+
+        private String step(Train train) {
+            Set<Vehicle> vehicles = modelVehicles.get(train);
+            int passengers = modelPassengers.get(train);
+            int freight = modelFreight.get(train);
+            int passengerCapacity = vehicles.stream().mapToInt(Vehicle::getPassengerCapacity).sum();
+            int freightCapacity = vehicles.stream().mapToInt(Vehicle::getFreightCapacity).sum();
+
+            switch (random.nextInt(6)) {
+                case 0: {
+                    Vehicle vehicle = randomVehicle(depot, random);
+                    boolean possible = modelVehicles.values().stream().noneMatch(set -> set.contains(vehicle));
+                    apply(possible, () -> train.add(vehicle));
+                    if (possible) {
+                        vehicles.add(vehicle);
+                    }
+                    return train.getName() + ".add(" + vehicle.getSerialNumber() + ") possible=" + possible;
+                }
+                case 1: {
+                    Vehicle vehicle = random.nextInt(4) == 0 ? randomVehicle(depot, random) : new ArrayList<>(train.getVehicles()).get(random.nextInt(train.getVehicleCount()));
+                    long engines = vehicles.stream().filter(v -> v instanceof Engine).count();
+                    boolean possible = vehicles.contains(vehicle)
+                            && !(vehicle instanceof Engine && engines < 2)
+                            && passengers <= passengerCapacity - vehicle.getPassengerCapacity()
+                            && freight <= freightCapacity - vehicle.getFreightCapacity();
+                    apply(possible, () -> train.remove(vehicle));
+                    if (possible) {
+                        vehicles.remove(vehicle);
+                    }
+                    return train.getName() + ".remove(" + vehicle.getSerialNumber() + ") possible=" + possible;
+                }
+                case 2: {
+                    int amount = randomAmount(passengerCapacity - passengers);
+                    boolean possible = amount >= 0 && passengers + amount <= passengerCapacity;
+                    apply(possible, () -> train.addPassengers(amount));
+                    if (possible) {
+                        modelPassengers.put(train, passengers + amount);
+                    }
+                    return train.getName() + ".addPassengers(" + amount + ") possible=" + possible;
+                }
+                case 3: {
+                    int amount = randomAmount(passengers);
+                    boolean possible = amount >= 0 && amount <= passengers;
+                    apply(possible, () -> train.removePassengers(amount));
+                    if (possible) {
+                        modelPassengers.put(train, passengers - amount);
+                    }
+                    return train.getName() + ".removePassengers(" + amount + ") possible=" + possible;
+                }
+                case 4: {
+                    int amount = randomAmount(freightCapacity - freight);
+                    boolean possible = amount >= 0 && freight + amount <= freightCapacity;
+                    apply(possible, () -> train.addFreight(amount));
+                    if (possible) {
+                        modelFreight.put(train, freight + amount);
+                    }
+                    return train.getName() + ".addFreight(" + amount + ") possible=" + possible;
+                }
+                default: {
+                    int amount = randomAmount(freight);
+                    boolean possible = amount >= 0 && amount <= freight;
+                    apply(possible, () -> train.removeFreight(amount));
+                    if (possible) {
+                        modelFreight.put(train, freight - amount);
+                    }
+                    return train.getName() + ".removeFreight(" + amount + ") possible=" + possible;
+                }
+            }
+        }
+
+        /**
+         * mostly amounts around the given limit, sometimes negative ones
+         */
+        private int randomAmount(int limit) {
+            if (random.nextInt(20) == 0) {
+                return -1 - random.nextInt(10);
+            }
+            return random.nextInt(Math.max(1, limit) + 1 + random.nextInt(10));
+        }
+
+        private void apply(boolean possible, Runnable operation) {
+            if (possible) {
+                operation.run();
+            } else {
+                assertThrows(TrainBuilderException.class, operation::run);
+            }
+        }
+
+        private String checkModel() {
+            for (Train train : trains) {
+                if (!modelVehicles.get(train).equals(new HashSet<>(train.getVehicles()))) {
+                    return train.getName() + " contains " + train.getVehicles().size() + " vehicles, the model " + modelVehicles.get(train).size();
+                }
+                if (modelPassengers.get(train) != train.getPassengerCount()) {
+                    return train.getName() + " has " + train.getPassengerCount() + " passengers, the model " + modelPassengers.get(train);
+                }
+                if (modelFreight.get(train) != train.getFreightWeight()) {
+                    return train.getName() + " has " + train.getFreightWeight() + " freight, the model " + modelFreight.get(train);
+                }
+            }
+            return null;
+        }
+
+        private String report(int step, String violation) {
+            return "seed=" + seed + " step=" + step + ": " + violation
+                    + "\nlast operations:\n  " + String.join("\n  ", lastOperations)
+                    + "\nrepeat with -Dtrains.stress.seed=" + seed;
+        }
+    }
+
+    /**
+     * How the concurrent run guards the calls to the trains. EXTERNAL serializes them with
+     * monitors of the test: a membership change synchronizes on the vehicle and then on
+     * the train, a load change only on the train. NONE calls the trains directly and is
+     * meant for a thread safe Train, select it with -Dtrains.stress.locking=none.
+     */
+    enum Locking {
+        EXTERNAL {
+            @Override
+            void membership(Vehicle vehicle, Train train, Runnable operation) {
+                synchronized (vehicle) {
+                    synchronized (train) {
+                        operation.run();
+                    }
+                }
+            }
+
+            @Override
+            void load(Train train, Runnable operation) {
+                synchronized (train) {
+                    operation.run();
+                }
+            }
+        },
+        NONE {
+            @Override
+            void membership(Vehicle vehicle, Train train, Runnable operation) {
+                operation.run();
+            }
+
+            @Override
+            void load(Train train, Runnable operation) {
+                operation.run();
+            }
+        };
+
+        abstract void membership(Vehicle vehicle, Train train, Runnable operation);
+
+        abstract void load(Train train, Runnable operation);
+
+        /**
+         * whether no other thread can change the train while an operation runs, only then
+         * the state before and after a single operation can get compared
+         */
+        boolean isExclusive() {
+            return this == EXTERNAL;
+        }
+
+        static Locking fromSystemProperty() {
+            return valueOf(System.getProperty("trains.stress.locking", EXTERNAL.name()).toUpperCase());
+        }
+    }
+
+    /**
+     * The state of a train (and the membership of the vehicle an operation works on)
+     * that a failing operation must not change.
+     */
+    private static class Snapshot {
+        private final List<Vehicle> vehicles;
+        private final int passengers;
+        private final int freight;
+        private final Train memberOfTrain;
+
+        Snapshot(Train train, Vehicle vehicle) {
+            vehicles = new ArrayList<>(train.getVehicles());
+            passengers = train.getPassengerCount();
+            freight = train.getFreightWeight();
+            memberOfTrain = vehicle == null ? null : vehicle.getMemberOfTrain();
+        }
+
+        String compare(Snapshot after) {
+            if (!vehicles.equals(after.vehicles)) {
+                return "the vehicles changed from " + vehicles.size() + " to " + after.vehicles.size();
+            }
+            if (passengers != after.passengers || freight != after.freight) {
+                return "the load changed from " + passengers + "/" + freight + " to " + after.passengers + "/" + after.freight;
+            }
+            if (memberOfTrain != after.memberOfTrain) {
+                return "the vehicle moved from " + memberOfTrain + " to " + after.memberOfTrain;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Several threads work on the same trains and vehicles. Every thread draws its
+     * operations from its own seeded stream, so the seed fixes the operations of each
+     * thread but not their interleaving. A failing run therefore reports the last
+     * operations of every thread in the order they started.
+     */
+    private static class ConcurrentRun {
+        private final long seed;
+        private final Locking locking;
+        private final List<Train> trains = new ArrayList<>();
+        private final List<Vehicle> vehicles;
+        private final AtomicLongArray passengers;
+        private final AtomicLongArray freight;
+        private final AtomicLong sequence = new AtomicLong();
+        private final List<LinkedList<String>> lastOperations = new ArrayList<>();
+        private volatile boolean failed;
+
+        ConcurrentRun(long seed, Locking locking) {
+            this.seed = seed;
+            this.locking = locking;
+            TrainDepot depot = DepotFixtures.generate(new Random(seed), 12, 60);
+            for (int i = 0; i < 6; i++) {
+                trains.add(new Train("Train " + i, depot.getEngines().get(i)));
+            }
+            vehicles = allVehicles(depot);
+            passengers = new AtomicLongArray(trains.size());
+            freight = new AtomicLongArray(trains.size());
+            for (int t = 0; t < THREADS; t++) {
+                lastOperations.add(new LinkedList<>());
+            }
+        }
+
+        void run() throws Exception {
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Throwable> failures = new ArrayList<>();
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    int thread = t;
+                    Random random = new Random(seed + t);
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        for (int step = 0; step < STEPS_PER_THREAD && !failed; step++) {
+                            step(thread, random);
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                // wait for every thread, so that their operation logs are complete
+                for (Future<?> future : futures) {
+                    try {
+                        future.get(1, TimeUnit.MINUTES);
+                    } catch (ExecutionException e) {
+                        failures.add(e.getCause());
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            if (!failures.isEmpty()) {
+                AssertionError error = new AssertionError(report(failures.get(0).toString()), failures.get(0));
+                failures.subList(1, failures.size()).forEach(error::addSuppressed);
+                throw error;
+            }
+
+            String violation = checkInvariants(trains, vehicles);
+            for (int i = 0; violation == null && i < trains.size(); i++) {
+                if (passengers.get(i) != trains.get(i).getPassengerCount()) {
+                    violation = trains.get(i).getName() + " has " + trains.get(i).getPassengerCount() + " passengers, but " + passengers.get(i) + " were added";
+                } else if (freight.get(i) != trains.get(i).getFreightWeight()) {
+                    violation = trains.get(i).getName() + " has " + trains.get(i).getFreightWeight() + " freight, but " + freight.get(i) + " was added";
+                }
+            }
+            if (violation != null) {
+                fail(report(violation));
+            }
+        }
+
+        private void step(int thread, Random random) {
+            int index = random.nextInt(trains.size());
+            Train train = trains.get(index);
+            long number = sequence.incrementAndGet();
+            String operation = train.getName();
+            try {
+                switch (random.nextInt(6)) {
+                    case 0: {
+                        Vehicle vehicle = vehicles.get(random.nextInt(vehicles.size()));
+                        operation = train.getName() + ".add(" + vehicle.getSerialNumber() + ")";
+                        locking.membership(vehicle, train, () -> checked(train, vehicle, () -> train.add(vehicle)));
+                        break;
+                    }
+                    case 1: {
+                        Vehicle vehicle = vehicles.get(random.nextInt(vehicles.size()));
+                        operation = train.getName() + ".remove(" + vehicle.getSerialNumber() + ")";
+                        locking.membership(vehicle, train, () -> checked(train, vehicle, () -> train.remove(vehicle)));
+                        break;
+                    }
+                    case 2:
+                    case 3: {
+                        int amount = random.nextInt(60);
+                        boolean add = random.nextBoolean();
+                        operation = train.getName() + (add ? ".addPassengers(" : ".removePassengers(") + amount + ")";
+                        locking.load(train, () -> checked(train, null, () -> {
+                            if (add) {
+                                train.addPassengers(amount);
+                            } else {
+                                train.removePassengers(amount);
+                            }
+                            passengers.addAndGet(index, add ? amount : -amount);
+                        }));
+                        break;
+                    }
+                    default: {
+                        int amount = random.nextInt(3000);
+                        boolean add = random.nextBoolean();
+                        operation = train.getName() + (add ? ".addFreight(" : ".removeFreight(") + amount + ")";
+                        locking.load(train, () -> checked(train, null, () -> {
+                            if (add) {
+                                train.addFreight(amount);
+                            } else {
+                                train.removeFreight(amount);
+                            }
+                            freight.addAndGet(index, add ? amount : -amount);
+                        }));
+                    }
+                }
+                operation += " ok";
+            } catch (TrainBuilderException e) {
+                operation += " refused: " + e.getMessage();
+            } catch (RuntimeException | AssertionError e) {
+                log(thread, number, operation + " failed: " + e);
+                failed = true;
+                throw e;
+            }
+            log(thread, number, operation);
+        }
+
+        /**
+         * runs the operation and, if no other thread can interfere, checks that a refused
+         * operation did not change anything and a successful one kept the invariants
+         */
+        private void checked(Train train, Vehicle vehicle, Runnable operation) {
+            Snapshot before = locking.isExclusive() ? new Snapshot(train, vehicle) : null;
+            try {
+                operation.run();
+            } catch (TrainBuilderException e) {
+                if (before != null) {
+                    String change = before.compare(new Snapshot(train, vehicle));
+                    if (change != null) {
+                        throw new AssertionError(train.getName() + " changed although the operation was refused: " + change, e);
+                    }
+                }
+                throw e;
+            }
+            if (locking.isExclusive()) {
+                String violation = checkInvariants(train);
+                if (violation != null) {
+                    throw new AssertionError(violation);
+                }
+            }
+        }
+
+        private void log(int thread, long number, String operation) {
+            LinkedList<String> log = lastOperations.get(thread);
+            log.add(String.format("#%d thread %d: %s", number, thread, operation));
+            if (log.size() > REPORTED_STEPS) {
+                log.removeFirst();
+            }
+        }
+
+        private String report(String violation) {
+            List<String> operations = new ArrayList<>();
+            lastOperations.forEach(operations::addAll);
+            operations.sort(Comparator.comparingLong(operation -> Long.parseLong(operation.substring(1, operation.indexOf(' ')))));
+            return "seed=" + seed + " threads=" + THREADS + " locking=" + locking + ": " + violation
+                    + "\nlast operations of every thread:\n  " + String.join("\n  ", operations)
+                    + "\nthe seed only fixes the operations of every thread, not their interleaving;"
+                    + " -Dtrains.stress.seed=" + seed + " runs the same operations again";
+        }
+    }
+
+    private static String checkInvariants(List<Train> trains, List<Vehicle> vehicles) {
+        Map<Vehicle, Train> owners = new HashMap<>();
+        for (Train train : trains) {
+            String violation = checkInvariants(train);
+            if (violation != null) {
+                return violation;
+            }
+            for (Vehicle vehicle : train.getVehicles()) {
+                Train owner = owners.put(vehicle, train);
+                if (owner != null) {
+                    return "vehicle " + vehicle.getSerialNumber() + " is part of " + owner.getName() + " and " + train.getName();
+                }
+            }
+        }
+        for (Vehicle vehicle : vehicles) {
+            if (owners.get(vehicle) != vehicle.getMemberOfTrain()) {
+                return "vehicle " + vehicle.getSerialNumber() + " is member of " + vehicle.getMemberOfTrain() + " but part of " + owners.get(vehicle);
+            }
+        }
+        return null;
+    }
+
+    private static String checkInvariants(Train train) {
+        List<Vehicle> vehicles = train.getVehicles();
+        if (vehicles.stream().noneMatch(vehicle -> vehicle instanceof Engine)) {
+            return train.getName() + " has no engine";
+        }
+        if (new HashSet<>(vehicles).size() != vehicles.size()) {
+            return train.getName() + " contains a vehicle twice";
+        }
+        int passengerCapacity = vehicles.stream().mapToInt(Vehicle::getPassengerCapacity).sum();
+        int freightCapacity = vehicles.stream().mapToInt(Vehicle::getFreightCapacity).sum();
+        int emptyWeight = vehicles.stream().mapToInt(Vehicle::getEmptyWeight).sum();
+        int length = vehicles.stream().mapToInt(Vehicle::getLength).sum();
+        int traction = vehicles.stream().filter(vehicle -> vehicle instanceof Engine).mapToInt(vehicle -> ((Engine) vehicle).getTraction()).sum();
+        int engineWeight = vehicles.stream().filter(vehicle -> vehicle instanceof Engine).mapToInt(Vehicle::getEmptyWeight).sum();
+        int overallWeight = emptyWeight + passengerCapacity * 75 + freightCapacity;
+
+        if (train.getPassengerCount() < 0 || train.getPassengerCount() > passengerCapacity) {
+            return train.getName() + " has " + train.getPassengerCount() + " passengers but a capacity of " + passengerCapacity;
+        }
+        if (train.getFreightWeight() < 0 || train.getFreightWeight() > freightCapacity) {
+            return train.getName() + " has " + train.getFreightWeight() + " freight but a capacity of " + freightCapacity;
+        }
+        if (train.getPassengerCapacity() != passengerCapacity
+                || train.getFreightCapacity() != freightCapacity
+                || train.getEmptyWeight() != emptyWeight
+                || train.getLength() != length
+                || train.getOverallWeigth() != overallWeight
+                || train.canTrainRun() != (traction >= overallWeight - engineWeight)) {
+            return train.getName() + " does not match the recomputed totals";
+        }
+        int passengers = train.getPassengerCount();
+        if (train.getMinimumConductorsNecessary() != (passengers == 0 ? 0 : 1 + passengers / 50)) {
+            return train.getName() + " needs a wrong number of conductors";
+        }
+        return null;
+    }
+
+    private static List<Vehicle> allVehicles(TrainDepot depot) {
+        List<Vehicle> vehicles = new ArrayList<>(depot.getEngines());
+        vehicles.addAll(depot.getWaggons());
+        return vehicles;
+    }
+
+    private static Vehicle randomVehicle(TrainDepot depot, Random random) {
+        List<Vehicle> vehicles = allVehicles(depot);
+        return vehicles.get(random.nextInt(vehicles.size()));
+    }
+}
@@ -0,0 +1,131 @@
+package at.dcosta.trains.simulation;
+
+import at.dcosta.trains.configuration.DepotFixtures;
+import at.dcosta.trains.configuration.TrainDepot;
+import at.dcosta.trains.error.SimulationException;
+import at.dcosta.trains.model.Train;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimulationTest {
+
+    private TrainDepot trainDepot;
+
+    @BeforeEach
+    void readDepot() {
+        trainDepot = DepotFixtures.read("trainDepot.yaml");
+    }
+
+    @Test
+    void testTrainRunsTimetable() {
+        Train train = new Train("Railjet", trainDepot.getEngines().get(2)).add(trainDepot.getWaggons().get(1));
+        Timetable timetable = new Timetable(train, List.of(
+                stop("Wien", 0, 0, 100),
+                stop("Linz", 90, 50, 20),
+                stop("Salzburg", 150, 70, 0)));
+
+        SimulationResult result = new Simulation(List.of(timetable), 42, 0).run();
+
+        assertEquals(3, result.getProcessedEvents());
+        assertEquals(1, result.getFinishedTrains());
+        assertEquals(0, result.getTotalDelay());
+        assertTrue(result.getIncidents().isEmpty());
+        assertEquals(0, train.getPassengerCount());
+    }
+
+    @Test
+    void testIncidentsStopTheTrain() {
+        // the sleeper and the engine have room for 25 passengers
+        Train overbooked = new Train("Overbooked", trainDepot.getEngines().get(2)).add(trainDepot.getWaggons().get(2));
+        // the steam engine is too weak for the passenger waggon
+        Train tooWeak = new Train("Too weak", trainDepot.getEngines().get(1)).add(trainDepot.getWaggons().get(1));
+
+        SimulationResult result = new Simulation(List.of(
+                new Timetable(overbooked, List.of(stop("Wien", 0, 0, 20), stop("Linz", 90, 0, 10), stop("Salzburg", 150, 0, 0))),
+                new Timetable(tooWeak, List.of(stop("Graz", 10, 0, 0), stop("Wien", 160, 0, 0)))), 42, 0).run();
+
+        assertEquals(3, result.getProcessedEvents());
+        assertEquals(0, result.getFinishedTrains());
+        assertEquals(2, result.getIncidents().size());
+        Incident first = result.getIncidents().get(0);
+        assertEquals("Too weak", first.getTrainName());
+        assertEquals("Graz", first.getStation());
+        Incident second = result.getIncidents().get(1);
+        assertEquals("Overbooked", second.getTrainName());
+        assertEquals("Linz", second.getStation());
+        assertEquals(90, second.getTime());
+        // the loads of the failing stop were checked before the train was changed
+        assertEquals(20, overbooked.getPassengerCount());
+    }
+
+    @Test
+    void testInvalidTimetables() {
+        Train train = new Train("Railjet", trainDepot.getEngines().get(2));
+        assertThrows(SimulationException.class, () -> new Timetable(train, List.of()));
+        assertThrows(SimulationException.class, () -> new Timetable(train, List.of(stop("Wien", 10, 0, 0), stop("Linz", 10, 0, 0))));
+        assertThrows(SimulationException.class, () -> new Timetable(train, List.of(stop("Wien", 10, -1, 0))));
+
+        Timetable timetable = new Timetable(train, List.of(stop("Wien", 10, 0, 0)));
+        assertThrows(SimulationException.class, () -> new Simulation(List.of(timetable, timetable), 42, 0));
+    }
+
+    @Test
+    void testTrainsWithEqualNameHashesGetDifferentDelays() {
+        // "Aa" and "BB" have the same String.hashCode()
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        List<Timetable> timetables = new ArrayList<>();
+        for (String name : List.of("Aa", "BB")) {
+            List<Stop> stops = new ArrayList<>();
+            for (int s = 0; s < 20; s++) {
+                stops.add(stop("Station " + s, s * 30L, 0, 0));
+            }
+            timetables.add(new Timetable(new Train(name, trainDepot.getEngines().get(timetables.size())), stops));
+        }
+        long delayOfFirst = new Simulation(timetables.subList(0, 1), 4711, 30).run().getTotalDelay();
+        long delayOfBoth = new Simulation(timetables, 4711, 30).run().getTotalDelay();
+        // identical random streams would double the delay
+        assertNotEquals(2 * delayOfFirst, delayOfBoth);
+    }
+
+    @Test
+    void testResultIndependentOfThreads() {
+        SimulationResult sequential = new Simulation(createTimetables(500, 20, 7), 4711, 5).run();
+        SimulationResult parallel = new Simulation(createTimetables(500, 20, 7), 4711, 5).run(4);
+
+        assertEquals(sequential.getProcessedEvents(), parallel.getProcessedEvents());
+        assertEquals(sequential.getFinishedTrains(), parallel.getFinishedTrains());
+        assertEquals(sequential.getTotalDelay(), parallel.getTotalDelay());
+        assertEquals(sequential.getIncidents(), parallel.getIncidents());
+        assertTrue(sequential.getTotalDelay() > 0);
+        assertFalse(sequential.getIncidents().isEmpty());
+    }
+
+    private static List<Timetable> createTimetables(int trainCount, int stopCount, long seed) {
+        Random random = new Random(seed);
+        TrainDepot depot = DepotFixtures.generate(random, trainCount, trainCount);
+        List<Timetable> timetables = new ArrayList<>();
+        for (int i = 0; i < trainCount; i++) {
+            Train train = new Train("Train " + i, depot.getEngines().get(i)).add(depot.getWaggons().get(i));
+            List<Stop> stops = new ArrayList<>();
+            int passengers = 0;
+            for (int s = 0; s < stopCount; s++) {
+                int off = passengers == 0 ? 0 : random.nextInt(passengers + 1);
+                int on = random.nextInt(40);
+                passengers += on - off;
+                stops.add(stop("Station " + random.nextInt(50), s * 30L, off, on));
+            }
+            timetables.add(new Timetable(train, stops));
+        }
+        return timetables;
+    }
+
+    private static Stop stop(String station, long arrival, int passengersOff, int passengersOn) {
+        return Stop.builder().station(station).arrival(arrival).passengersOff(passengersOff).passengersOn(passengersOn).build();
+    }
+}